@@ -15,12 +15,14 @@ public class Main {
         AppStore store = new AppStore();
         FileService files = new FileService();
         DiffService diffs = new DiffService(files);
-        InstallationService installationService = new InstallationService(files);
+        InstallationService installationService = new InstallationService(files, diffs);
         VersionManager vm = new VersionManager(store, files, diffs, installationService);
 
         setupBaseVersions(vm, store);
         testUpload(vm, store);
         testPatch(vm);
+        testSegmentedDiff(vm, store, installationService);
+        testResumableTransfer();
         testRelease(vm, store);
         testCheckForUpdates(vm);
         testRaceCondition(vm);
@@ -68,6 +70,59 @@ public class Main {
         vm.createUpdatePatch("3.4.1", "3.1.2");
     }
 
+    private static void testSegmentedDiff(VersionManager vm, AppStore store, InstallationService installationService) {
+        System.out.println("\n=========== TEST: segmented diff ===========");
+
+        byte[] base = new byte[8 * DiffService.DEFAULT_SEGMENT_SIZE + 123];
+        new Random(42).nextBytes(base);
+        byte[] next = Arrays.copyOf(base, base.length + 4096);
+        next[3 * DiffService.DEFAULT_SEGMENT_SIZE + 7] ^= 1;
+
+        vm.uploadNewVersion("7.0.0", 28, "Large build", base);
+        vm.uploadNewVersion("7.0.1", 28, "Large build hotfix", next);
+
+        System.out.println("\n--- Scenario 1: Patch between large APKs only carries changed segments ---");
+        String diffUrl = vm.createUpdatePatch("7.0.0", "7.0.1");
+
+        System.out.println("\n--- Scenario 2: Patch is verified and applied segment by segment ---");
+        Device device = new Device("Device-LARGE", "Pixel-8", 34, "7.0.0");
+        installationService.updateApp(device, store.getVersion("7.0.0").getApkUrl(),
+                store.getVersion("7.0.1").getApkUrl(), diffUrl);
+
+        System.out.println("\n--- Scenario 3: Patch applied over the wrong base APK is rejected ---");
+        installationService.updateApp(device, store.getVersion("3.1.2").getApkUrl(),
+                store.getVersion("7.0.1").getApkUrl(), diffUrl);
+    }
+
+    private static void testResumableTransfer() {
+        System.out.println("\n=========== TEST: verified, resumable transfer ===========");
+
+        // Chunk 2 arrives corrupted on its first few reads, simulating a flaky link.
+        int[] corruptReads = {4};
+        FileService flaky = new FileService(1024) {
+            @Override
+            public byte[] readChunk(String url, int index) {
+                byte[] chunk = super.readChunk(url, index);
+                if (index == 2 && corruptReads[0]-- > 0) {
+                    chunk[0] ^= 1;
+                }
+                return chunk;
+            }
+        };
+        InstallationService installer = new InstallationService(flaky, new DiffService(flaky));
+        byte[] apk = new byte[5 * 1024 + 17];
+        new Random(7).nextBytes(apk);
+        String apkUrl = flaky.uploadFile(apk, "APK");
+        System.out.println("[INFO] " + flaky.getManifest(apkUrl));
+        Device device = new Device("Device-FLAKY", "Pixel-6", 33, null);
+
+        System.out.println("\n--- Scenario 1: Corrupted chunk pauses the transfer after retries ---");
+        installer.installApp(device, apkUrl);
+
+        System.out.println("\n--- Scenario 2: Retried install resumes from the last verified chunk ---");
+        installer.installApp(device, apkUrl);
+    }
+
     private static void testRelease(VersionManager vm, AppStore store) {
         System.out.println("\n=========== TEST: releaseVersion ===========");
 
@@ -0,0 +1,30 @@
+package org.phonepe.domain;
+
+/**
+ * Integrity metadata captured at upload time: a whole-file SHA-256 digest
+ * plus a CRC32C checksum for every fixed-size chunk.
+ */
+public record FileManifest(
+        int length,
+        int chunkSize,
+        String sha256,
+        long[] chunkChecksums
+) {
+    public int chunkCount() { return chunkChecksums.length; }
+
+    public int chunkOffset(int index) { return index * chunkSize; }
+
+    public int chunkLength(int index) {
+        return Math.min(chunkSize, length - chunkOffset(index));
+    }
+
+    @Override
+    public String toString() {
+        return "FileManifest{" +
+                "length=" + length +
+                ", chunkSize=" + chunkSize +
+                ", chunks=" + chunkChecksums.length +
+                ", sha256=" + sha256 +
+                '}';
+    }
+}
@@ -2,26 +2,175 @@ package org.phonepe.service;
 
 import org.phonepe.domain.AppVersion;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+import java.util.stream.IntStream;
+
 /**
- * Very naive diff pack creator.
- * joined the two payloads to simulate a diff.
+ * Segmented diff pack creator.
+ * Splits the target APK into fixed-size segments and diffs each one against the
+ * source segment at the same offset, in parallel on the common fork-join pool.
+ * Unchanged segments are recorded as COPY (no payload), changed ones as DATA.
+ *
+ * Pack layout:
+ *   "DIFF" | segmentSize:int | sourceLength:int | targetLength:int | segmentCount:int
+ *   index  : segmentCount x (op:byte | payloadOffset:int | length:int | crc32c:long)
+ *   payload: concatenated DATA segments
  */
 public class DiffService {
 
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 20;
+
+    private static final byte OP_COPY = 0;
+    private static final byte OP_DATA = 1;
+    private static final int HEADER_SIZE = 4 + 4 * 4;
+    private static final int INDEX_ENTRY_SIZE = 1 + 4 + 4 + 8;
+
     private final FileService files;
+    private final int segmentSize;
 
     public DiffService(FileService files) {
+        this(files, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public DiffService(FileService files, int segmentSize) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("segmentSize must be positive: " + segmentSize);
+        }
         this.files = files;
+        this.segmentSize = segmentSize;
+    }
+
+    /** A DATA segment's payload is toApk[start, start + length), copied straight into the pack. */
+    private record Segment(byte op, int start, int length, long crc) {
+        int payloadLength() { return op == OP_DATA ? length : 0; }
     }
 
     public byte[] createDiffPack(byte[] fromApk, byte[] toApk) {
-        byte[] out = new byte[fromApk.length + toApk.length + 4];
-        out[0] = 'D'; out[1] = 'I'; out[2] = 'F'; out[3] = 'F';
-        System.arraycopy(fromApk, 0, out, 4, fromApk.length);
-        System.arraycopy(toApk, 0, out, 4 + fromApk.length, toApk.length);
+        int segmentCount = segmentCount(toApk.length, segmentSize);
+
+        Segment[] segments = IntStream.range(0, segmentCount)
+                .parallel()
+                .mapToObj(i -> diffSegment(fromApk, toApk, i))
+                .toArray(Segment[]::new);
+
+        int[] payloadOffsets = new int[segmentCount];
+        int payloadSize = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            payloadOffsets[i] = payloadSize;
+            payloadSize += segments[i].payloadLength();
+        }
+
+        int payloadStart = HEADER_SIZE + segmentCount * INDEX_ENTRY_SIZE;
+        byte[] out = new byte[Math.addExact(payloadStart, payloadSize)];
+        ByteBuffer header = ByteBuffer.wrap(out);
+        header.put((byte) 'D').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+        header.putInt(segmentSize).putInt(fromApk.length).putInt(toApk.length).putInt(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            Segment s = segments[i];
+            header.put(s.op()).putInt(payloadOffsets[i]).putInt(s.length()).putLong(s.crc());
+        }
+
+        // Offsets are fixed now, so payload copies are independent of each other.
+        IntStream.range(0, segmentCount)
+                .parallel()
+                .forEach(i -> System.arraycopy(toApk, segments[i].start(), out,
+                        payloadStart + payloadOffsets[i], segments[i].payloadLength()));
         return out;
     }
 
+    private Segment diffSegment(byte[] fromApk, byte[] toApk, int index) {
+        int start = index * segmentSize;
+        int length = Math.min(segmentSize, toApk.length - start);
+        int end = start + length;
+        long crc = crc32c(toApk, start, length);
+
+        boolean unchanged = end <= fromApk.length
+                && Arrays.equals(fromApk, start, end, toApk, start, end);
+        return new Segment(unchanged ? OP_COPY : OP_DATA, start, length, crc);
+    }
+
+    /**
+     * Rebuild the target APK from the source APK and a diff pack.
+     * Segments are verified against their checksum and applied in parallel.
+     * Returns null if the pack is malformed or any segment fails verification.
+     */
+    public byte[] applyDiffPack(byte[] fromApk, byte[] pack) {
+        if (pack.length < HEADER_SIZE || pack[0] != 'D' || pack[1] != 'I' || pack[2] != 'F' || pack[3] != 'F') {
+            System.out.println("[ERROR] Invalid diff pack header.");
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.wrap(pack, 4, pack.length - 4);
+        int packSegmentSize = header.getInt();
+        int sourceLength = header.getInt();
+        int targetLength = header.getInt();
+        int segmentCount = header.getInt();
+        if (packSegmentSize <= 0 || targetLength < 0
+                || segmentCount != segmentCount(targetLength, packSegmentSize)) {
+            System.out.println("[ERROR] Invalid diff pack header.");
+            return null;
+        }
+        if (fromApk.length != sourceLength) {
+            System.out.println("[ERROR] Diff pack expects a " + sourceLength + " byte source, got " + fromApk.length + ".");
+            return null;
+        }
+        long payloadStart = HEADER_SIZE + (long) segmentCount * INDEX_ENTRY_SIZE;
+        if (pack.length < payloadStart) {
+            System.out.println("[ERROR] Diff pack index is truncated.");
+            return null;
+        }
+
+        byte[] out = new byte[targetLength];
+        boolean ok = IntStream.range(0, segmentCount)
+                .parallel()
+                .allMatch(i -> applySegment(fromApk, pack, out, packSegmentSize, (int) payloadStart, i));
+        if (!ok) {
+            System.out.println("[ERROR] Diff pack failed segment verification.");
+            return null;
+        }
+        return out;
+    }
+
+    private boolean applySegment(byte[] fromApk, byte[] pack, byte[] out,
+                                 int packSegmentSize, int payloadStart, int index) {
+        ByteBuffer entry = ByteBuffer.wrap(pack, HEADER_SIZE + index * INDEX_ENTRY_SIZE, INDEX_ENTRY_SIZE);
+        byte op = entry.get();
+        int payloadOffset = entry.getInt();
+        int length = entry.getInt();
+        long crc = entry.getLong();
+
+        // segmentCount matches targetLength, so every segment starts inside out.
+        int targetOffset = index * packSegmentSize;
+        if (length != Math.min(packSegmentSize, out.length - targetOffset)) return false;
+
+        switch (op) {
+            case OP_COPY -> {
+                if ((long) targetOffset + length > fromApk.length) return false;
+                System.arraycopy(fromApk, targetOffset, out, targetOffset, length);
+            }
+            case OP_DATA -> {
+                long src = (long) payloadStart + payloadOffset;
+                if (payloadOffset < 0 || src + length > pack.length) return false;
+                System.arraycopy(pack, (int) src, out, targetOffset, length);
+            }
+            default -> {
+                return false;
+            }
+        }
+        return crc32c(out, targetOffset, length) == crc;
+    }
+
+    private static int segmentCount(int length, int segmentSize) {
+        return (int) (((long) length + segmentSize - 1) / segmentSize);
+    }
+
+    private static long crc32c(byte[] data, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(data, offset, length);
+        return crc.getValue();
+    }
+
     /**
      * Generate a diff if missing between two versions.
      */
@@ -49,4 +198,3 @@ public class DiffService {
     }
 
 }
-
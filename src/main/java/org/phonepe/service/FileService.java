@@ -1,16 +1,40 @@
 package org.phonepe.service;
 
+import org.phonepe.domain.FileManifest;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
 
 /**
  * In-memory file store.
- * uploadFile -> returns "mem://<id>"
- * getFile    -> returns stored content
+ * uploadFile  -> returns "mem://<id>", records a FileManifest in the same pass
+ * getFile     -> returns stored content
+ * getManifest -> returns the SHA-256 digest and per-chunk CRC32C checksums
+ * readChunk   -> returns one chunk of stored content, as sent over the wire
  */
 public class FileService {
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
     private final Map<String, byte[]> storage = new ConcurrentHashMap<>();
+    private final Map<String, FileManifest> manifests = new ConcurrentHashMap<>();
+    private final int chunkSize;
+
+    public FileService() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    public FileService(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
 
     public String uploadFile(byte[] content, String fileType) {
         if (content == null || content.length == 0) {
@@ -18,6 +42,7 @@ public class FileService {
             return null;
         }
         String id = "mem://" + UUID.randomUUID();
+        manifests.put(id, buildManifest(content));
         storage.put(id, content);
         System.out.println("[FILE] Uploaded " + fileType + " file to " + id + " (" + content.length + " bytes)");
         return id;
@@ -31,5 +56,49 @@ public class FileService {
         }
         return b;
     }
-}
 
+    public FileManifest getManifest(String url) {
+        FileManifest m = manifests.get(url);
+        if (m == null) {
+            System.out.println("[ERROR] Manifest not found in FileService: " + url);
+        }
+        return m;
+    }
+
+    public byte[] readChunk(String url, int index) {
+        byte[] b = storage.get(url);
+        FileManifest m = manifests.get(url);
+        if (b == null || m == null || index < 0 || index >= m.chunkCount()) {
+            return null;
+        }
+        int offset = m.chunkOffset(index);
+        return Arrays.copyOfRange(b, offset, offset + m.chunkLength(index));
+    }
+
+    /**
+     * Single pass over the content: every chunk feeds both the whole-file
+     * digest and its own CRC32C.
+     */
+    private FileManifest buildManifest(byte[] content) {
+        MessageDigest sha256 = sha256();
+        CRC32C crc = new CRC32C();
+        long[] checksums = new long[(content.length + chunkSize - 1) / chunkSize];
+        for (int i = 0; i < checksums.length; i++) {
+            int offset = i * chunkSize;
+            int len = Math.min(chunkSize, content.length - offset);
+            sha256.update(content, offset, len);
+            crc.reset();
+            crc.update(content, offset, len);
+            checksums[i] = crc.getValue();
+        }
+        return new FileManifest(content.length, chunkSize, HexFormat.of().formatHex(sha256.digest()), checksums);
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,30 +1,167 @@
 package org.phonepe.service;
 
 import org.phonepe.domain.Device;
+import org.phonepe.domain.FileManifest;
+
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
 
 public class InstallationService {
+    private static final int MAX_CHUNK_ATTEMPTS = 3;
+    private static final long TRANSFER_IDLE_TIMEOUT_MS = 30 * 60 * 1000L;
+
     private final FileService files;
+    private final DiffService diffs;
+    private final Map<String, Transfer> transfers = new ConcurrentHashMap<>();
+
+    public InstallationService(FileService files, DiffService diffs) {
+        this.files = files;
+        this.diffs = diffs;
+    }
 
-    public InstallationService(FileService files) { this.files = files; }
+    /**
+     * Partially received file for one device. Only verified chunks are kept,
+     * so an interrupted transfer resumes at nextChunk.
+     * Fields are guarded by the Transfer's own monitor.
+     */
+    private static final class Transfer {
+        final String url;
+        final byte[] buffer;
+        final MessageDigest sha256 = FileService.sha256();
+        int nextChunk;
+        boolean finished;
+        volatile long lastProgressMillis = System.currentTimeMillis();
+
+        Transfer(String url, int length) {
+            this.url = url;
+            this.buffer = new byte[length];
+        }
+
+        boolean isIdle(long now) { return now - lastProgressMillis > TRANSFER_IDLE_TIMEOUT_MS; }
+    }
 
-    public void installApp(Device device, String apkUrl) {
-        byte[] apk = files.getFile(apkUrl);
+    public boolean installApp(Device device, String apkUrl) {
+        byte[] apk = receiveFile(device, apkUrl);
         if (apk == null) {
-            System.out.println("[ERROR] APK not found for install on " + device.getDeviceId());
-            return;
+            System.out.println("[ERROR] APK not received for install on " + device.getDeviceId());
+            return false;
         }
         System.out.println("[INSTALL] device=" + device.getDeviceId() +
                 " bytes=" + apk.length + " from=" + apkUrl);
+        return true;
     }
 
-    public void updateApp(Device device, String diffUrl) {
-        byte[] pack = files.getFile(diffUrl);
+    /**
+     * Patch the installed APK with a diff pack, then check the rebuilt APK
+     * against the target APK's SHA-256 before reporting success.
+     */
+    public boolean updateApp(Device device, String fromApkUrl, String toApkUrl, String diffUrl) {
+        byte[] pack = receiveFile(device, diffUrl);
         if (pack == null) {
-            System.out.println("[ERROR] Diff pack not found for update on " + device.getDeviceId());
-            return;
+            System.out.println("[ERROR] Diff pack not received for update on " + device.getDeviceId());
+            return false;
+        }
+        byte[] fromApk = files.getFile(fromApkUrl);
+        if (fromApk == null) {
+            System.out.println("[ERROR] Installed APK not found for update on " + device.getDeviceId());
+            return false;
+        }
+        byte[] apk = diffs.applyDiffPack(fromApk, pack);
+        if (apk == null) {
+            System.out.println("[ERROR] Diff pack could not be applied on " + device.getDeviceId());
+            return false;
+        }
+        FileManifest target = files.getManifest(toApkUrl);
+        if (target == null || !target.sha256().equals(sha256Hex(apk))) {
+            System.out.println("[ERROR] Patched APK does not match target " + toApkUrl + " on " + device.getDeviceId());
+            return false;
         }
         System.out.println("[UPDATE] device=" + device.getDeviceId() +
-                " bytes=" + pack.length + " from=" + diffUrl);
+                " bytes=" + pack.length + " patched=" + apk.length + " from=" + diffUrl);
+        return true;
     }
-}
 
+    /**
+     * Stream a file to the device chunk by chunk, checking each chunk against
+     * its CRC32C and the whole file against its SHA-256.
+     * A chunk that keeps failing pauses the transfer; the next call for the
+     * same device and url resumes from the last verified chunk.
+     * Each device keeps at most one paused transfer, and transfers idle for
+     * longer than TRANSFER_IDLE_TIMEOUT_MS are dropped.
+     */
+    private byte[] receiveFile(Device device, String url) {
+        FileManifest manifest = files.getManifest(url);
+        if (manifest == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        transfers.values().removeIf(t -> t.isIdle(now));
+
+        String deviceId = device.getDeviceId();
+        while (true) {
+            Transfer t = transfers.compute(deviceId, (k, existing) ->
+                    existing != null && existing.url.equals(url) ? existing : new Transfer(url, manifest.length()));
+            synchronized (t) {
+                if (t.finished) {
+                    // Another caller completed this transfer while we waited; start afresh.
+                    continue;
+                }
+                return receiveChunks(deviceId, t, manifest);
+            }
+        }
+    }
+
+    private byte[] receiveChunks(String deviceId, Transfer t, FileManifest manifest) {
+        if (t.nextChunk > 0) {
+            System.out.println("[RESUME] device=" + deviceId + " url=" + t.url +
+                    " from chunk " + t.nextChunk + "/" + manifest.chunkCount());
+        }
+
+        CRC32C crc = new CRC32C();
+        while (t.nextChunk < manifest.chunkCount()) {
+            int index = t.nextChunk;
+            byte[] chunk = receiveChunk(t.url, manifest, index, crc);
+            if (chunk == null) {
+                System.out.println("[WARN] Transfer paused for " + deviceId +
+                        " at chunk " + index + "/" + manifest.chunkCount() + " of " + t.url);
+                return null;
+            }
+            System.arraycopy(chunk, 0, t.buffer, manifest.chunkOffset(index), chunk.length);
+            t.sha256.update(chunk);
+            t.nextChunk++;
+            t.lastProgressMillis = System.currentTimeMillis();
+        }
+
+        t.finished = true;
+        transfers.remove(deviceId, t);
+        String digest = HexFormat.of().formatHex(t.sha256.digest());
+        if (!digest.equals(manifest.sha256())) {
+            System.out.println("[ERROR] SHA-256 mismatch for " + t.url + " on " + deviceId);
+            return null;
+        }
+        return t.buffer;
+    }
+
+    private static String sha256Hex(byte[] content) {
+        return HexFormat.of().formatHex(FileService.sha256().digest(content));
+    }
+
+    private byte[] receiveChunk(String url, FileManifest manifest, int index, CRC32C crc) {
+        for (int attempt = 1; attempt <= MAX_CHUNK_ATTEMPTS; attempt++) {
+            byte[] chunk = files.readChunk(url, index);
+            if (chunk != null && chunk.length == manifest.chunkLength(index)) {
+                crc.reset();
+                crc.update(chunk);
+                if (crc.getValue() == manifest.chunkChecksums()[index]) {
+                    return chunk;
+                }
+            }
+            System.out.println("[WARN] Chunk " + index + " of " + url + " failed verification (attempt " +
+                    attempt + "/" + MAX_CHUNK_ATTEMPTS + ")");
+        }
+        return null;
+    }
+}
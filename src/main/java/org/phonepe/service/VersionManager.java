@@ -182,12 +182,15 @@ public class VersionManager {
             }
             switch (plan.type()) {
                 case INSTALL -> {
-                    installationService.installApp(device, plan.apkUrl());
-                    device.setCurrentAppVersion(plan.target().getVersion());
+                    if (installationService.installApp(device, plan.apkUrl())) {
+                        device.setCurrentAppVersion(plan.target().getVersion());
+                    }
                 }
                 case UPDATE -> {
-                    installationService.updateApp(device, plan.diffUrl());
-                    device.setCurrentAppVersion(plan.target().getVersion());
+                    if (installationService.updateApp(device, plan.current().getApkUrl(),
+                            plan.target().getApkUrl(), plan.diffUrl())) {
+                        device.setCurrentAppVersion(plan.target().getVersion());
+                    }
                 }
             }
         }